@@ -0,0 +1,187 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool;
+
+import de.kswmd.gfxtool.tiles.DmgTile;
+import de.kswmd.gfxtool.tiles.PackedTile;
+import de.kswmd.gfxtool.tiles.TileEncoder;
+import de.kswmd.gfxtool.tiles.TileExtractingMethod;
+import de.kswmd.gfxtool.tiles.TileFormat;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Tileset for the GameBoy Advance in 4bpp or 8bpp format. The tilemaps consist
+ * of 16 bit screen entries (little endian): bits 0 - 9 tile index, bit 10
+ * horizontal flip, bit 11 vertical flip, bits 12 - 15 palette bank (always 0).
+ * Like the regular backgrounds they are 32 or 64 tiles wide and high and
+ * stored in 32x32 screenblocks.
+ *
+ * @author kai
+ */
+public class GbaTilesetHolder {
+
+    public static final int SCREEN_ENTRY_H_FLIP = 1 << 10;
+    public static final int SCREEN_ENTRY_V_FLIP = 1 << 11;
+    public static final int SCREENBLOCK_DIMENSION = 32;
+
+    private final Path tilesetImagePath;
+    private final BufferedImage tilesetImage;
+    private final TileFormat format;
+    private TileEncoder encoder;
+    private List<PackedTile> tiles = new ArrayList<>();
+
+    public GbaTilesetHolder(Path tilesetImagePath, TileFormat format) throws IOException {
+        this.tilesetImagePath = tilesetImagePath;
+        this.tilesetImage = ImageIO.read(tilesetImagePath.toFile());
+        this.format = format;
+    }
+
+    /**
+     * @param widthInTiles
+     * @param heightInTiles
+     * @throws IIOException if the map has no size of a regular background
+     */
+    public static void validateMapSize(int widthInTiles, int heightInTiles) throws IIOException {
+        if ((widthInTiles != SCREENBLOCK_DIMENSION && widthInTiles != SCREENBLOCK_DIMENSION * 2)
+                || (heightInTiles != SCREENBLOCK_DIMENSION && heightInTiles != SCREENBLOCK_DIMENSION * 2)) {
+            throw new IIOException("Map has " + widthInTiles + "x" + heightInTiles + " tiles but a background must be 32 or 64 tiles wide and high.");
+        }
+    }
+
+    /**
+     * maps a tile of the map to its screen entry. Every screenblock holds
+     * 32x32 entries row by row, the screenblocks follow each other left to
+     * right and top to bottom.
+     *
+     * @param tx
+     * @param ty
+     * @param widthInTiles
+     * @return index of the screen entry
+     */
+    public static int getScreenEntryIndex(int tx, int ty, int widthInTiles) {
+        int screenblock = (ty / SCREENBLOCK_DIMENSION) * (widthInTiles / SCREENBLOCK_DIMENSION) + tx / SCREENBLOCK_DIMENSION;
+        return screenblock * SCREENBLOCK_DIMENSION * SCREENBLOCK_DIMENSION
+                + (ty % SCREENBLOCK_DIMENSION) * SCREENBLOCK_DIMENSION + tx % SCREENBLOCK_DIMENSION;
+    }
+
+    public BufferedImage getTilesetImage() {
+        return tilesetImage;
+    }
+
+    /**
+     *
+     * @param method
+     * @param colorPal only needed for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * @throws IOException
+     */
+    public void initialize(TileExtractingMethod method, String[] colorPal) throws IOException {
+        encoder = new TileEncoder(format, method, colorPal);
+        tiles = new ArrayList<>(Arrays.asList(encoder.extractTiles(tilesetImage)));
+    }
+
+    /**
+     * makes all tiles unique. A tile is also dropped if a flipped version of
+     * it is already part of the tileset because the screen entries can flip
+     * it.
+     */
+    public void uniqueTilesOnly() {
+        Set<PackedTile> unique = new LinkedHashSet<>();
+        for (PackedTile t : tiles) {
+            PackedTile flippedX = t.flipX();
+            if (!unique.contains(t) && !unique.contains(flippedX)
+                    && !unique.contains(t.flipY()) && !unique.contains(flippedX.flipY())) {
+                unique.add(t);
+            }
+        }
+        tiles = new ArrayList<>(unique);
+    }
+
+    public List<PackedTile> getTiles() {
+        return tiles;
+    }
+
+    private void validateTilesAmount() throws IIOException {
+        if (tiles.size() > format.getMaxTiles()) {
+            throw new IIOException("Tileset has " + tiles.size() + " tiles but screen entries can only address " + format.getMaxTiles() + ".");
+        }
+    }
+
+    public void writeAllTiles(String outputPath) throws FileNotFoundException, IOException {
+        validateTilesAmount();
+        int bytes = tiles.size() * format.getBytesPerTile();
+        System.out.println(tilesetImagePath + ": " + tiles.size() + " tiles, " + bytes + " bytes in "
+                + ((bytes + TileFormat.CHARBLOCK_SIZE - 1) / TileFormat.CHARBLOCK_SIZE) + " charblock(s)");
+        OutputStream fos = new FileOutputStream(outputPath);
+        for (PackedTile t : tiles) {
+            fos.write(t.getData());
+        }
+        fos.flush();
+        fos.close();
+    }
+
+    /**
+     * maps every tile and its flipped versions to a screen entry. Unflipped
+     * tiles win over flipped ones and the first equal tile wins.
+     */
+    private Map<PackedTile, Integer> createScreenEntryIndex() {
+        Map<PackedTile, Integer> index = new HashMap<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            index.putIfAbsent(tiles.get(i), i);
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            PackedTile flippedX = tiles.get(i).flipX();
+            index.putIfAbsent(flippedX, i | SCREEN_ENTRY_H_FLIP);
+            index.putIfAbsent(tiles.get(i).flipY(), i | SCREEN_ENTRY_V_FLIP);
+            index.putIfAbsent(flippedX.flipY(), i | SCREEN_ENTRY_H_FLIP | SCREEN_ENTRY_V_FLIP);
+        }
+        return index;
+    }
+
+    /**
+     * writes the screen entries of every image next to it with the ending
+     * .tlm, in the order of the screenblocks
+     *
+     * @param paths
+     * @throws IOException if a map has no size of a regular background
+     */
+    public void createTileMaps(String[] paths) throws IOException {
+        validateTilesAmount();
+        Map<PackedTile, Integer> index = createScreenEntryIndex();
+        for (String fp : paths) {
+            BufferedImage bfimg = ImageIO.read(Path.of(fp).toFile());
+            PackedTile[] mapTiles = encoder.extractTiles(bfimg);
+            int widthInTiles = bfimg.getWidth() / DmgTile.TILE_DIMENSION;
+            validateMapSize(widthInTiles, bfimg.getHeight() / DmgTile.TILE_DIMENSION);
+            byte[] buffer = new byte[mapTiles.length * 2];
+            for (int i = 0; i < mapTiles.length; i++) {
+                Integer screenEntry = index.get(mapTiles[i]);
+                if (screenEntry == null) {
+                    throw new IOException("No tile found for tile " + i + " in " + fp);
+                }
+                int entryIndex = getScreenEntryIndex(i % widthInTiles, i / widthInTiles, widthInTiles);
+                buffer[entryIndex * 2] = (byte) (screenEntry & 0xFF);
+                buffer[entryIndex * 2 + 1] = (byte) ((screenEntry >> 8) & 0xFF);
+            }
+            OutputStream fos = new FileOutputStream(new File(fp.replaceAll("\\.png$", ".tlm")));
+            fos.write(buffer);
+            fos.flush();
+            fos.close();
+        }
+    }
+}
@@ -4,12 +4,15 @@
 package de.kswmd.gfxtool;
 
 import de.kswmd.gfxtool.tiles.TileExtractingMethod;
+import de.kswmd.gfxtool.tiles.TileFormat;
+import de.kswmd.gfxtool.utils.DitheringMethod;
 import de.kswmd.gfxtool.utils.GfxUtils;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.function.Supplier;
 import javax.imageio.ImageIO;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -36,6 +39,14 @@ public class GfxTool {
                 .get()
         );
 
+        options.addOption(Option.builder("spr")
+                .longOpt("sprites")
+                .desc("Generates a 2bpp file with distinct sprite tiles and a metasprite file for every frame of a sprite sheet")
+                .numberOfArgs(3)
+                .argName("/path/to/sprites.png> <frameWidth> <frameHeight")
+                .get()
+        );
+
         options.addOption(Option.builder("conv")
                 .longOpt("convert")
                 .desc("Converts an image to colorpal defined")
@@ -44,6 +55,14 @@ public class GfxTool {
                 .get()
         );
 
+        options.addOption(Option.builder("d")
+                .longOpt("dither")
+                .desc("Dithers the image of <-conv, --convert> instead of mapping every pixel to the nearest color.")
+                .hasArg()
+                .argName("bayer|fs")
+                .get()
+        );
+
         options.addOption(Option.builder("f")
                 .longOpt("fill")
                 .desc("Fills spaces from sprites if missing from <crt, createTileSet> when creating Tileset.")
@@ -65,6 +84,14 @@ public class GfxTool {
                 .get()
         );
 
+        options.addOption(Option.builder("a")
+                .longOpt("append")
+                .desc("Appends the distinct tiles of new maps to an existing gameboy 2bpp file and creates only the tiledmaps of the new maps.")
+                .hasArgs()
+                .argName("/path/to/tileset.2bpp> <file1.png> <file2.png ...")
+                .get()
+        );
+
         options.addOption(Option.builder("c")
                 .longOpt("colorPal")
                 .desc("Adds a colorpalet to the tileset to filter for. If none it tries to identify the colorPalet of the image.")
@@ -81,6 +108,20 @@ public class GfxTool {
                 .get()
         );
 
+        options.addOption(Option.builder("cgb")
+                .longOpt("gameboyColor")
+                .desc("Assigns every tile of <-o, --output> one of 8 GameBoy Color palettes and writes the palettes and for <-t, --tilemaps> attribute maps.")
+                .get()
+        );
+
+        options.addOption(Option.builder("gba")
+                .longOpt("gameboyAdvance")
+                .desc("Generates with <-o, --output> a GameBoy Advance tileset in 4bpp (default) or 8bpp format and 16 bit screen entries for <-t, --tilemaps>.")
+                .optionalArg(true)
+                .argName("4|8")
+                .get()
+        );
+
         options.addOption(Option.builder("t")
                 .longOpt("tilemaps")
                 .desc("Generates a tiledmap based on the following files.")
@@ -89,6 +130,20 @@ public class GfxTool {
                 .get()
         );
 
+        options.addOption(Option.builder("w")
+                .longOpt("workers")
+                .desc("Maximum amount of images of <-t, --tilemaps> processed at the same time. Defaults to the amount of processors.")
+                .hasArg()
+                .argName("amount")
+                .get()
+        );
+
+        options.addOption(Option.builder("v")
+                .longOpt("verify")
+                .desc("Decodes the written 2bpp file and tiledmaps of <-t, --tilemaps> again and compares them to the source images.")
+                .get()
+        );
+
         options.addOption(Option.builder("h")
                 .longOpt("help")
                 .desc("Prints this message")
@@ -103,6 +158,11 @@ public class GfxTool {
                 printHelpMessage(options);
             }
 
+            if (cmd.hasOption("v") && !(cmd.hasOption("o") && cmd.hasOption("t"))) {
+                //without tilemaps there is nothing to verify, so a golden check would pass silently
+                throw new ParseException("Option '-v' requires the options '-o' and '-t'");
+            }
+
             if (cmd.hasOption("crt")) {
                 String[] values = cmd.getOptionValues("crt");
                 Path[] paths = new Path[values.length];
@@ -122,7 +182,7 @@ public class GfxTool {
                     if (colors != null) {
                         colorPal = colors.split(",");
                     } else {
-                        colorPal = th.getColorPalArrayFromImage(img);
+                        colorPal = TilesetHolder.getColorPalArrayFromImage(img);
                         colorPal = Arrays.copyOf(colorPal, Math.min(4, colorPal.length));
                     }
 
@@ -131,15 +191,79 @@ public class GfxTool {
                 }
             }
 
+            if (cmd.hasOption("spr")) {
+                String[] values = cmd.getOptionValues("spr");
+                int frameWidth, frameHeight;
+                try {
+                    frameWidth = Integer.parseInt(values[1]);
+                    frameHeight = Integer.parseInt(values[2]);
+                } catch (NumberFormatException ex) {
+                    throw new ParseException("Frame width and height must be numbers");
+                }
+                SpriteSheetHolder sh = new SpriteSheetHolder(Path.of(values[0]), frameWidth, frameHeight);
+
+                if (cmd.hasOption("c")) {
+                    String[] colorPal = resolveColorPal(cmd, sh::getVisibleColorPalArrayFromImage);
+                    if (cmd.getOptionValue("c") == null) {
+                        //color 0 is the transparent color of sprites
+                        colorPal = SpriteSheetHolder.withTransparentColor(colorPal);
+                    }
+                    sh.initialize(TileExtractingMethod.PIXEL_PERFECT, colorPal);
+                } else {
+                    sh.initialize(TileExtractingMethod.GRAY_SCALE, null);
+                }
+
+                sh.writeAllTilesTo2BppBinary(values[0].replaceAll("\\.png$", ".2bpp"));
+                sh.writeMetaspritesBinary(values[0].replaceAll("\\.png$", ".msp"));
+            }
+
             if (cmd.hasOption("conv")) {
                 String[] values = cmd.getOptionValues("conv");
                 Path s = Path.of(values[0]);
                 Path o = Path.of(values[1]);
+                DitheringMethod ditheringMethod = DitheringMethod.NONE;
+                if (cmd.hasOption("d")) {
+                    String method = cmd.getOptionValue("d");
+                    switch (method) {
+                        case "bayer":
+                            ditheringMethod = DitheringMethod.BAYER;
+                            break;
+                        case "fs":
+                            ditheringMethod = DitheringMethod.FLOYD_STEINBERG;
+                            break;
+                        default:
+                            throw new ParseException("Invalid dithering method " + method);
+                    }
+                }
                 BufferedImage img = ImageIO.read(s.toFile());
-                img = GfxUtils.convertImagePixelsToColorPal(img, values[2].split(","));
+                img = GfxUtils.convertImagePixelsToColorPal(img, values[2].split(","), ditheringMethod);
                 ImageIO.write(img, "png", o.toFile());
             }
             
+            if (cmd.hasOption("a")) {
+                String[] values = cmd.getOptionValues("a");
+                if (values == null || values.length < 2) {
+                    throw new ParseException("Option '-a' requires a 2bpp file and at least one image");
+                }
+                TilesetAppender appender;
+                if (cmd.hasOption("c")) {
+                    String colors = cmd.getOptionValue("c");
+                    if (colors == null) {
+                        //the colors of the existing tileset can not be read from the 2bpp file
+                        throw new ParseException("Option '-a' requires the colors of option '-c'");
+                    }
+                    String[] colorPal = sortColorPal(cmd, colors.split(","));
+                    appender = new TilesetAppender(Path.of(values[0]), TileExtractingMethod.PIXEL_PERFECT, colorPal);
+                } else {
+                    appender = new TilesetAppender(Path.of(values[0]), TileExtractingMethod.GRAY_SCALE, null);
+                }
+                String[] paths = Arrays.copyOfRange(values, 1, values.length);
+                appender.addTileMaps(paths);
+                appender.write();
+                System.out.println(values[0] + ": " + appender.getNewTiles().size() + " new tile(s) appended to "
+                        + appender.getExistingTilesAmount() + " existing tile(s)");
+            }
+
             if (cmd.hasOption("o")) {
                 String[] values = cmd.getOptionValues("o");
                 if (values == null || values.length != 2) {
@@ -149,6 +273,12 @@ public class GfxTool {
                 String outputPath = values[1];
 
                 Path tilesetImagePath = Path.of(pngPath);
+
+                if (cmd.hasOption("gba")) {
+                    createGbaTileset(cmd, tilesetImagePath, outputPath);
+                    return;
+                }
+
                 TilesetHolder th = new TilesetHolder(tilesetImagePath);
 
                 if (!th.isDimensionMultipleOf8()) {
@@ -156,21 +286,11 @@ public class GfxTool {
                 }
 
                 String[] colorPal;
-                if (cmd.hasOption("c")) {
-                    String colors = cmd.getOptionValue("c");
-                    if (colors != null) {
-                        colorPal = colors.split(",");
-                    } else {
-                        colorPal = th.getColorPalArrayFromImage();
-                    }
-
-                    if (cmd.hasOption("scp")) {
-                        String optionValue = cmd.getOptionValue("scp");
-                        //only reverse if the value equals 1
-                        boolean reverseColorValue = optionValue != null && optionValue.equals("1");
-                        colorPal = GfxUtils.getSortedColorPalet(colorPal, reverseColorValue);
-                    }
-
+                if (cmd.hasOption("cgb")) {
+                    //the colors are taken from the image and packed into the cgb palettes
+                    th.initialize(TileExtractingMethod.CGB_PALETTE);
+                } else if (cmd.hasOption("c")) {
+                    colorPal = resolveColorPal(cmd, th::getColorPalArrayFromImage);
                     th.initialize(TileExtractingMethod.PIXEL_PERFECT, colorPal);
 
                 } else {
@@ -180,6 +300,12 @@ public class GfxTool {
                 if (cmd.hasOption("u")) {
                     th.uniqueTilesOnly();
                 }
+
+                String paletteOutputPath = outputPath.replaceAll("\\.2bpp$", "") + ".pal";
+                if (cmd.hasOption("cgb")) {
+                    th.assignCgbPalettes();
+                    th.writeCgbPalettes(paletteOutputPath);
+                }
                 
                 //uncomment for debug purpose
                 //th.recreatePictureFromDmgTiles(tilesetImagePath.toString().replaceAll("\\.png$", "wtf.png"));
@@ -189,8 +315,26 @@ public class GfxTool {
 
                 if (cmd.hasOption("t")) {
                     String[] paths = cmd.getOptionValues("t");
+                    int workers = Runtime.getRuntime().availableProcessors();
+                    if (cmd.hasOption("w")) {
+                        try {
+                            workers = Integer.parseInt(cmd.getOptionValue("w"));
+                        } catch (NumberFormatException ex) {
+                            throw new ParseException("Option '-w' requires a number");
+                        }
+                        if (workers < 1) {
+                            throw new ParseException("Option '-w' requires at least 1 worker");
+                        }
+                    }
                     th.createIndices();
-                    th.createDmgTileMaps(paths);
+                    th.createDmgTileMaps(paths, workers);
+
+                    if (cmd.hasOption("v")) {
+                        TileMapVerifier verifier = th.isCgb()
+                                ? new TileMapVerifier(Path.of(outputPath), Path.of(paletteOutputPath))
+                                : new TileMapVerifier(Path.of(outputPath), th.getExtractingMethod(), th.getColorPal());
+                        verifyTileMaps(verifier, paths);
+                    }
                 }
 
             }
@@ -198,9 +342,95 @@ public class GfxTool {
         } catch (ParseException ex) {
             System.getLogger(GfxTool.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
             printHelpMessage(options);
+            //a failed run must not look like a passed verification
+            System.exit(1);
         } catch (IOException ex) {
             System.getLogger(GfxTool.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
             printHelpMessage(options);
+            System.exit(1);
+        }
+    }
+
+    private static void createGbaTileset(CommandLine cmd, Path tilesetImagePath, String outputPath) throws ParseException, IOException {
+        String bpp = cmd.getOptionValue("gba");
+        TileFormat format;
+        if (bpp == null || bpp.equals("4")) {
+            format = TileFormat.GBA_4BPP;
+        } else if (bpp.equals("8")) {
+            format = TileFormat.GBA_8BPP;
+        } else {
+            throw new ParseException("Option '-gba' only supports 4 or 8 bits per pixel");
+        }
+        if (cmd.hasOption("cgb")) {
+            throw new ParseException("Option '-gba' can not be combined with '-cgb'");
+        }
+        if (cmd.hasOption("w")) {
+            throw new ParseException("Option '-gba' can not be combined with '-w'");
+        }
+
+        GbaTilesetHolder th = new GbaTilesetHolder(tilesetImagePath, format);
+        TileExtractingMethod method = TileExtractingMethod.GRAY_SCALE;
+        String[] colorPal = null;
+        if (cmd.hasOption("c")) {
+            colorPal = resolveColorPal(cmd, () -> TilesetHolder.getColorPalArrayFromImage(th.getTilesetImage()));
+            method = TileExtractingMethod.PIXEL_PERFECT;
+        }
+
+        th.initialize(method, colorPal);
+        if (cmd.hasOption("u")) {
+            th.uniqueTilesOnly();
+        }
+        th.writeAllTiles(outputPath);
+
+        if (cmd.hasOption("t")) {
+            String[] paths = cmd.getOptionValues("t");
+            th.createTileMaps(paths);
+            if (cmd.hasOption("v")) {
+                verifyTileMaps(new TileMapVerifier(Path.of(outputPath), format, method, colorPal), paths);
+            }
+        }
+    }
+
+    /**
+     * takes the colors of option '-c' or if it has no values the colors of
+     * the image and sorts them if option '-scp' is set
+     *
+     * @param cmd
+     * @param colorPalFromImage only called if option '-c' has no values
+     * @return
+     * @throws ParseException
+     */
+    private static String[] resolveColorPal(CommandLine cmd, Supplier<String[]> colorPalFromImage) throws ParseException {
+        String colors = cmd.getOptionValue("c");
+        return sortColorPal(cmd, colors != null ? colors.split(",") : colorPalFromImage.get());
+    }
+
+    /**
+     * sorts the colors if option '-scp' is set
+     *
+     * @param cmd
+     * @param colorPal
+     * @return
+     * @throws ParseException
+     */
+    private static String[] sortColorPal(CommandLine cmd, String[] colorPal) throws ParseException {
+        if (cmd.hasOption("scp")) {
+            String optionValue = cmd.getOptionValue("scp");
+            //only reverse if the value equals 1
+            boolean reverseColorValue = optionValue != null && optionValue.equals("1");
+            colorPal = GfxUtils.getSortedColorPalet(colorPal, reverseColorValue);
+        }
+        return colorPal;
+    }
+
+    /**
+     * exits with status 1 if a tilemap does not match its source image
+     */
+    private static void verifyTileMaps(TileMapVerifier verifier, String[] paths) throws IOException {
+        int failedMaps = verifier.verifyTileMaps(paths);
+        if (failedMaps > 0) {
+            System.out.println(failedMaps + " of " + paths.length + " tilemaps do not match their source image.");
+            System.exit(1);
         }
     }
 
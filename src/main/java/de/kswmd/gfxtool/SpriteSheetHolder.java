@@ -0,0 +1,281 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool;
+
+import de.kswmd.gfxtool.tiles.DmgTile;
+import de.kswmd.gfxtool.tiles.PackedTile;
+import de.kswmd.gfxtool.tiles.TileEncoder;
+import de.kswmd.gfxtool.tiles.TileExtractingMethod;
+import de.kswmd.gfxtool.tiles.TileFormat;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Splits a sprite sheet into frames and converts every frame into a
+ * metasprite. Only the non empty tiles inside the bounding box of a frame are
+ * used and equal tiles (also flipped ones) are stored once for all frames.
+ *
+ * @author kai
+ */
+public class SpriteSheetHolder {
+
+    public static final int OAM_ENTRIES = 40;
+    public static final int ATTRIBUTE_X_FLIP = 1 << 5;
+    public static final int ATTRIBUTE_Y_FLIP = 1 << 6;
+    /**
+     * placeholder for color 0 of a derived colorPal. It never matches a
+     * visible pixel.
+     */
+    public static final String TRANSPARENT_COLOR = "00000000";
+
+    private final BufferedImage spriteSheetImage;
+    private final int frameWidth;
+    private final int frameHeight;
+    private final List<PackedTile> tiles = new ArrayList<>();
+    private final Map<PackedTile, Integer> tileIndices = new HashMap<>();
+    private final List<List<int[]>> metasprites = new ArrayList<>();
+
+    /**
+     *
+     * @param spriteSheetPath
+     * @param frameWidth width of a single frame in pixels
+     * @param frameHeight height of a single frame in pixels
+     * @throws IOException
+     */
+    public SpriteSheetHolder(Path spriteSheetPath, int frameWidth, int frameHeight) throws IOException {
+        this.spriteSheetImage = ImageIO.read(spriteSheetPath.toFile());
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        if (frameWidth <= 0 || frameHeight <= 0 || frameWidth > 256 || frameHeight > 256) {
+            throw new IIOException("Frame width and height must be between 1 and 256 pixels.");
+        }
+        if (spriteSheetImage.getWidth() % frameWidth != 0 || spriteSheetImage.getHeight() % frameHeight != 0) {
+            throw new IIOException("Wrong format of image. Width and height must be a multiple of the frame size.");
+        }
+    }
+
+    /**
+     * @return the colors of the sprite sheet without fully transparent pixels
+     */
+    public String[] getVisibleColorPalArrayFromImage() {
+        Set<String> colorPalSet = new LinkedHashSet<>();
+        for (int y = 0; y < spriteSheetImage.getHeight(); y++) {
+            for (int x = 0; x < spriteSheetImage.getWidth(); x++) {
+                var rgb = spriteSheetImage.getRGB(x, y);
+                if ((rgb >>> 24) != 0) {
+                    colorPalSet.add(Integer.toHexString(rgb));
+                }
+            }
+        }
+        return colorPalSet.toArray(String[]::new);
+    }
+
+    /**
+     * reserves color 0 for the transparent pixels, so the visible colors get
+     * the color values 1 - 3
+     *
+     * @param visibleColorPal
+     * @return the colorPal with {@link #TRANSPARENT_COLOR} in front
+     * @throws IIOException if there are more than 3 visible colors
+     */
+    public static String[] withTransparentColor(String[] visibleColorPal) throws IIOException {
+        int maxVisibleColors = TileFormat.DMG_2BPP.getColors() - 1;
+        if (visibleColorPal.length > maxVisibleColors) {
+            throw new IIOException("Sprite sheet has " + visibleColorPal.length + " visible colors but sprites can only show " + maxVisibleColors + ".");
+        }
+        String[] colorPal = new String[visibleColorPal.length + 1];
+        colorPal[0] = TRANSPARENT_COLOR;
+        System.arraycopy(visibleColorPal, 0, colorPal, 1, visibleColorPal.length);
+        return colorPal;
+    }
+
+    /**
+     * creates the metasprites of all frames, row by row
+     *
+     * @param method
+     * @param colorPal only needed for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * @throws IOException
+     */
+    public void initialize(TileExtractingMethod method, String[] colorPal) throws IOException {
+        tiles.clear();
+        tileIndices.clear();
+        metasprites.clear();
+
+        int[] colorIndices = getColorIndices(method, colorPal);
+        int width = spriteSheetImage.getWidth();
+        int frameIndex = 0;
+        for (int fy = 0; fy < spriteSheetImage.getHeight(); fy += frameHeight) {
+            for (int fx = 0; fx < width; fx += frameWidth) {
+                metasprites.add(createMetasprite(colorIndices, width, fx, fy, frameIndex));
+                frameIndex++;
+            }
+        }
+
+        if (tiles.size() > TilesetHolder.TILESET_SPRITES_SIZE) {
+            throw new IIOException("Sprites need " + tiles.size() + " tiles but the sprite region only has " + TilesetHolder.TILESET_SPRITES_SIZE + ".");
+        }
+    }
+
+    /**
+     * fully transparent pixels always get the color value 0 which is the
+     * transparent color of sprites. Visible pixels must get one of the values
+     * 1 - 3, in grayscale mode the gray values are spread over them.
+     */
+    private int[] getColorIndices(TileExtractingMethod method, String[] colorPal) throws IOException {
+        int width = spriteSheetImage.getWidth();
+        int height = spriteSheetImage.getHeight();
+        int[] pixels = spriteSheetImage.getRGB(0, 0, width, height, null, 0, width);
+        Map<Integer, Integer> cache = new HashMap<>();
+        for (int i = 0; i < pixels.length; i++) {
+            int pixelColor = pixels[i];
+            if ((pixelColor >>> 24) == 0) {
+                pixels[i] = 0;
+                continue;
+            }
+            int value = cache.computeIfAbsent(pixelColor, c -> getVisibleColorIndex(c, method, colorPal));
+            if (value < 0) {
+                throw new IIOException("Color " + Integer.toHexString(pixelColor) + " is not part of the colorPal.");
+            }
+            if (value == 0) {
+                throw new IIOException("Visible color " + Integer.toHexString(pixelColor) + " gets color 0 which is transparent for sprites.");
+            }
+            pixels[i] = value;
+        }
+        return pixels;
+    }
+
+    private static int getVisibleColorIndex(int pixelColor, TileExtractingMethod method, String[] colorPal) {
+        if (method == TileExtractingMethod.GRAY_SCALE) {
+            return 1 + TileEncoder.getColorIndex(pixelColor, method, colorPal, TileFormat.DMG_2BPP.getColors() - 1);
+        }
+        return DmgTile.getColorIndex(pixelColor, method, colorPal);
+    }
+
+    private List<int[]> createMetasprite(int[] colorIndices, int scanline, int fx, int fy, int frameIndex) throws IOException {
+        List<int[]> entries = new ArrayList<>();
+
+        //bounding box of all visible pixels of the frame
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (int y = 0; y < frameHeight; y++) {
+            int rowOffset = (fy + y) * scanline + fx;
+            for (int x = 0; x < frameWidth; x++) {
+                if (colorIndices[rowOffset + x] != 0) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            return entries;
+        }
+
+        //the tile grid starts at the bounding box and may reach over the frame border
+        int[] tileBuffer = new int[DmgTile.TILE_DIMENSION * DmgTile.TILE_DIMENSION];
+        for (int ty = minY; ty <= maxY; ty += DmgTile.TILE_DIMENSION) {
+            for (int tx = minX; tx <= maxX; tx += DmgTile.TILE_DIMENSION) {
+                for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+                    for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                        boolean inside = tx + x < frameWidth && ty + y < frameHeight;
+                        tileBuffer[y * DmgTile.TILE_DIMENSION + x] = inside
+                                ? colorIndices[(fy + ty + y) * scanline + fx + tx + x]
+                                : 0;
+                    }
+                }
+                PackedTile tile = PackedTile.of(TileFormat.DMG_2BPP, tileBuffer, 0, DmgTile.TILE_DIMENSION);
+                if (tile.isEmpty()) {
+                    continue;
+                }
+                int[] indexAndAttributes = findOrAddTile(tile);
+                entries.add(new int[]{ty, tx, indexAndAttributes[0], indexAndAttributes[1]});
+            }
+        }
+
+        if (entries.size() > OAM_ENTRIES) {
+            throw new IIOException("Frame " + frameIndex + " needs " + entries.size() + " sprites but only " + OAM_ENTRIES + " are available.");
+        }
+        return entries;
+    }
+
+    /**
+     * looks up the tile and its flipped versions
+     *
+     * @return tile index and the flip attributes
+     */
+    private int[] findOrAddTile(PackedTile tile) {
+        Integer index = tileIndices.get(tile);
+        if (index != null) {
+            return new int[]{index, 0};
+        }
+        PackedTile flippedX = tile.flipX();
+        index = tileIndices.get(flippedX);
+        if (index != null) {
+            return new int[]{index, ATTRIBUTE_X_FLIP};
+        }
+        index = tileIndices.get(tile.flipY());
+        if (index != null) {
+            return new int[]{index, ATTRIBUTE_Y_FLIP};
+        }
+        index = tileIndices.get(flippedX.flipY());
+        if (index != null) {
+            return new int[]{index, ATTRIBUTE_X_FLIP | ATTRIBUTE_Y_FLIP};
+        }
+        index = tiles.size();
+        tiles.add(tile);
+        tileIndices.put(tile, index);
+        return new int[]{index, 0};
+    }
+
+    public List<PackedTile> getTiles() {
+        return tiles;
+    }
+
+    public List<List<int[]>> getMetasprites() {
+        return metasprites;
+    }
+
+    public void writeAllTilesTo2BppBinary(String outputPath) throws FileNotFoundException, IOException {
+        OutputStream fos = new FileOutputStream(outputPath);
+        for (PackedTile t : tiles) {
+            fos.write(t.getData());
+        }
+        fos.flush();
+        fos.close();
+    }
+
+    /**
+     * writes for every frame the amount of sprites followed by 4 bytes per
+     * sprite: y offset, x offset, tile index and attributes
+     *
+     * @param outputPath
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public void writeMetaspritesBinary(String outputPath) throws FileNotFoundException, IOException {
+        OutputStream fos = new FileOutputStream(outputPath);
+        for (List<int[]> entries : metasprites) {
+            fos.write(entries.size());
+            for (int[] entry : entries) {
+                for (int value : entry) {
+                    fos.write(value & 0xFF);
+                }
+            }
+        }
+        fos.flush();
+        fos.close();
+    }
+}
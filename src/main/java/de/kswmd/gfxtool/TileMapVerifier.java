@@ -0,0 +1,312 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool;
+
+import de.kswmd.gfxtool.tiles.CgbPaletteSolver;
+import de.kswmd.gfxtool.tiles.DmgTile;
+import de.kswmd.gfxtool.tiles.TileEncoder;
+import de.kswmd.gfxtool.tiles.TileExtractingMethod;
+import de.kswmd.gfxtool.tiles.TileFormat;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads the written tileset and tilemap files back from their bytes and
+ * compares the decoded pixels with the source images. In cgb mode the
+ * attribute maps and palettes are read as well, for the GBA the 16 bit screen
+ * entries including their flip bits.
+ *
+ * @author kai
+ */
+public class TileMapVerifier {
+
+    private final TileFormat format;
+    private final byte[] tileData;
+    private final int tilesAmount;
+    private final TileExtractingMethod method;
+    private final String[] colorPal;
+    private int[][] cgbPalettes;
+
+    /**
+     *
+     * @param tilesetBinaryPath the written 2bpp file
+     * @param method the method the tiles were extracted with
+     * @param colorPal the colorPal the tiles were extracted with, only needed
+     * for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * @throws IOException
+     */
+    public TileMapVerifier(Path tilesetBinaryPath, TileExtractingMethod method, String[] colorPal) throws IOException {
+        this(tilesetBinaryPath, TileFormat.DMG_2BPP, method, colorPal);
+    }
+
+    /**
+     *
+     * @param tilesetBinaryPath the written tileset file
+     * @param format the format of the tiles, the tilemaps of the GBA formats
+     * consist of screen entries
+     * @param method the method the tiles were extracted with
+     * @param colorPal the colorPal the tiles were extracted with, only needed
+     * for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * @throws IOException
+     */
+    public TileMapVerifier(Path tilesetBinaryPath, TileFormat format, TileExtractingMethod method, String[] colorPal) throws IOException {
+        this.format = format;
+        this.tileData = Files.readAllBytes(tilesetBinaryPath);
+        if (tileData.length % format.getBytesPerTile() != 0) {
+            throw new IIOException("Size of " + tilesetBinaryPath + " is not a multiple of " + format.getBytesPerTile() + " bytes.");
+        }
+        this.tilesAmount = tileData.length / format.getBytesPerTile();
+        this.method = method;
+        this.colorPal = colorPal;
+    }
+
+    /**
+     * verifies cgb tilemaps. The attribute maps are expected next to the
+     * tilemaps and the colors are compared in the 15 bit format of the
+     * palettes.
+     *
+     * @param tilesetBinaryPath the written 2bpp file
+     * @param paletteBinaryPath the written palette file
+     * @throws IOException
+     */
+    public TileMapVerifier(Path tilesetBinaryPath, Path paletteBinaryPath) throws IOException {
+        this(tilesetBinaryPath, TileFormat.DMG_2BPP, TileExtractingMethod.CGB_PALETTE, null);
+
+        byte[] paletteData = Files.readAllBytes(paletteBinaryPath);
+        int bytesPerPalette = CgbPaletteSolver.COLORS_PER_PALETTE * 2;
+        this.cgbPalettes = new int[paletteData.length / bytesPerPalette][CgbPaletteSolver.COLORS_PER_PALETTE];
+        for (int p = 0; p < cgbPalettes.length; p++) {
+            for (int c = 0; c < CgbPaletteSolver.COLORS_PER_PALETTE; c++) {
+                int offset = p * bytesPerPalette + c * 2;
+                cgbPalettes[p][c] = (paletteData[offset] & 0xFF) | ((paletteData[offset + 1] & 0xFF) << 8);
+            }
+        }
+    }
+
+    /**
+     * verifies the .tlm files of the given images in parallel and prints a
+     * report in the order of the given paths
+     *
+     * @param paths the source images, the tilemaps are expected next to them
+     * @return the amount of maps which do not match their source image
+     * @throws IOException
+     */
+    public int verifyTileMaps(String[] paths) throws IOException {
+        List<MapResult> results;
+        try {
+            results = Arrays.stream(paths)
+                    .parallel()
+                    .map(this::verifyTileMapUnchecked)
+                    .toList();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        int failedMaps = 0;
+        for (MapResult result : results) {
+            if (result.error != null) {
+                System.out.println(result.path + ": " + result.error);
+                failedMaps++;
+            } else if (!result.mismatchingCells.isEmpty()) {
+                System.out.println(result.path + ": " + result.mismatchingCells.size() + " mismatching cell(s)");
+                for (String cell : result.mismatchingCells) {
+                    System.out.println("    " + cell);
+                }
+                failedMaps++;
+            } else {
+                System.out.println(result.path + ": OK");
+            }
+        }
+        return failedMaps;
+    }
+
+    private MapResult verifyTileMapUnchecked(String path) {
+        try {
+            return verifyTileMap(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private MapResult verifyTileMap(String path) throws IOException {
+        MapResult result = new MapResult(path);
+        BufferedImage img = ImageIO.read(Path.of(path).toFile());
+        int width = img.getWidth();
+        int height = img.getHeight();
+        if (width % DmgTile.TILE_DIMENSION != 0 || height % DmgTile.TILE_DIMENSION != 0) {
+            result.error = "skipped, dimensions are not a multiple of " + DmgTile.TILE_DIMENSION;
+            return result;
+        }
+
+        Path tileMapPath = Path.of(path.replaceAll("\\.png$", ".tlm"));
+        if (!Files.exists(tileMapPath)) {
+            result.error = "missing tilemap " + tileMapPath;
+            return result;
+        }
+        byte[] tileMap = Files.readAllBytes(tileMapPath);
+        int widthInTiles = width / DmgTile.TILE_DIMENSION;
+        int heightInTiles = height / DmgTile.TILE_DIMENSION;
+        //the screen entries of the GBA have 2 bytes and are stored in screenblocks
+        int bytesPerEntry = format == TileFormat.DMG_2BPP ? 1 : 2;
+        if (format != TileFormat.DMG_2BPP) {
+            try {
+                GbaTilesetHolder.validateMapSize(widthInTiles, heightInTiles);
+            } catch (IIOException ex) {
+                result.error = ex.getMessage();
+                return result;
+            }
+        }
+        if (tileMap.length != widthInTiles * heightInTiles * bytesPerEntry) {
+            result.error = "tilemap has " + (tileMap.length / bytesPerEntry) + " entries but image has " + (widthInTiles * heightInTiles) + " cells";
+            return result;
+        }
+
+        byte[] attributeMap = null;
+        if (cgbPalettes != null) {
+            Path attributeMapPath = Path.of(path.replaceAll("\\.png$", ".atr"));
+            if (!Files.exists(attributeMapPath)) {
+                result.error = "missing attribute map " + attributeMapPath;
+                return result;
+            }
+            attributeMap = Files.readAllBytes(attributeMapPath);
+            if (attributeMap.length != tileMap.length) {
+                result.error = "attribute map has " + attributeMap.length + " entries but tilemap has " + tileMap.length;
+                return result;
+            }
+        }
+
+        int[] sourcePixels = img.getRGB(0, 0, width, height, null, 0, width);
+        int[] decodedPixels = new int[width * height];
+        int[] tileBuffer = new int[DmgTile.TILE_DIMENSION * DmgTile.TILE_DIMENSION];
+        Map<Integer, Integer> colorIndices = new HashMap<>();
+
+        for (int ty = 0; ty < heightInTiles; ty++) {
+            for (int tx = 0; tx < widthInTiles; tx++) {
+                int cell = ty * widthInTiles + tx;
+                int mapIndex;
+                int tile;
+                int attributes = 0;
+                int flips = 0;
+                if (format == TileFormat.DMG_2BPP) {
+                    mapIndex = tileMap[cell] & 0xFF;
+                    attributes = attributeMap != null ? attributeMap[cell] & 0xFF : 0;
+                    tile = attributeMap != null ? resolveCgbTile(mapIndex, attributes) : resolveTile(mapIndex);
+                } else {
+                    int entryIndex = GbaTilesetHolder.getScreenEntryIndex(tx, ty, widthInTiles);
+                    int screenEntry = (tileMap[entryIndex * 2] & 0xFF) | ((tileMap[entryIndex * 2 + 1] & 0xFF) << 8);
+                    mapIndex = screenEntry & 0x3FF;
+                    tile = mapIndex;
+                    flips = screenEntry & (GbaTilesetHolder.SCREEN_ENTRY_H_FLIP | GbaTilesetHolder.SCREEN_ENTRY_V_FLIP);
+                }
+                if (tile >= tilesAmount) {
+                    result.mismatchingCells.add(cellDescription(tx, ty, mapIndex) + " is out of range");
+                    continue;
+                }
+                int offset = ty * DmgTile.TILE_DIMENSION * width + tx * DmgTile.TILE_DIMENSION;
+                format.decode(tileData, tile * format.getBytesPerTile(), tileBuffer, 0, DmgTile.TILE_DIMENSION);
+                copyFlipped(tileBuffer, flips, decodedPixels, offset, width);
+                boolean matches;
+                if (attributeMap != null) {
+                    int paletteIndex = attributes & 0x07;
+                    if (paletteIndex >= cgbPalettes.length) {
+                        result.mismatchingCells.add(cellDescription(tx, ty, mapIndex) + " uses missing palette " + paletteIndex);
+                        continue;
+                    }
+                    matches = cgbCellMatches(sourcePixels, decodedPixels, offset, width, cgbPalettes[paletteIndex]);
+                } else {
+                    matches = cellMatches(sourcePixels, decodedPixels, offset, width, colorIndices);
+                }
+                if (!matches) {
+                    result.mismatchingCells.add(cellDescription(tx, ty, mapIndex));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the tilemaps only contain the lower 8 bits of the tile index. With more
+     * than 256 tiles the index refers to the upper tiles like the dmg does in
+     * $8800 addressing mode.
+     */
+    private int resolveTile(int mapIndex) {
+        int tile = mapIndex + 256;
+        return tile < tilesAmount ? tile : mapIndex;
+    }
+
+    /**
+     * the cgb takes the tile index from vram bank 1 if bit 3 of the attributes
+     * is set
+     */
+    private int resolveCgbTile(int mapIndex, int attributes) {
+        return (attributes & TilesetHolder.CGB_ATTRIBUTE_VRAM_BANK) != 0 ? mapIndex + 256 : mapIndex;
+    }
+
+    /**
+     * copies a decoded tile and applies the flip bits of its screen entry
+     */
+    private static void copyFlipped(int[] tileBuffer, int screenEntry, int[] dest, int offset, int scanline) {
+        boolean flipX = (screenEntry & GbaTilesetHolder.SCREEN_ENTRY_H_FLIP) != 0;
+        boolean flipY = (screenEntry & GbaTilesetHolder.SCREEN_ENTRY_V_FLIP) != 0;
+        int last = DmgTile.TILE_DIMENSION - 1;
+        for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+            int srcRow = (flipY ? last - y : y) * DmgTile.TILE_DIMENSION;
+            for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                dest[offset + y * scanline + x] = tileBuffer[srcRow + (flipX ? last - x : x)];
+            }
+        }
+    }
+
+    private boolean cellMatches(int[] sourcePixels, int[] decodedPixels, int offset, int scanline, Map<Integer, Integer> colorIndices) {
+        for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+            int rowOffset = offset + y * scanline;
+            for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                int pixelColor = sourcePixels[rowOffset + x];
+                int expected = colorIndices.computeIfAbsent(pixelColor, c -> TileEncoder.getColorIndex(c, method, colorPal, format.getColors()));
+                if (expected != decodedPixels[rowOffset + x]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean cgbCellMatches(int[] sourcePixels, int[] decodedPixels, int offset, int scanline, int[] palette) {
+        for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+            int rowOffset = offset + y * scanline;
+            for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                int expected = CgbPaletteSolver.toBgr555(sourcePixels[rowOffset + x]);
+                if (expected != palette[decodedPixels[rowOffset + x]]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String cellDescription(int tx, int ty, int mapIndex) {
+        return "cell " + tx + "," + ty + " (tile index " + mapIndex + ")";
+    }
+
+    private static class MapResult {
+
+        private final String path;
+        private final List<String> mismatchingCells = new ArrayList<>();
+        private String error;
+
+        private MapResult(String path) {
+            this.path = path;
+        }
+    }
+}
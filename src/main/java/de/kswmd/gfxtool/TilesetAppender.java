@@ -0,0 +1,157 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool;
+
+import de.kswmd.gfxtool.tiles.PackedTile;
+import de.kswmd.gfxtool.tiles.TileEncoder;
+import de.kswmd.gfxtool.tiles.TileExtractingMethod;
+import de.kswmd.gfxtool.tiles.TileFormat;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Adds the tiles of new maps to an existing 2bpp file without touching the
+ * tiles which are already part of it. So the indices of the existing tilemaps
+ * stay valid and only the tilemaps of the new maps are written.
+ *
+ * @author kai
+ */
+public class TilesetAppender {
+
+    private static final TileFormat FORMAT = TileFormat.DMG_2BPP;
+
+    private final Path tilesetBinaryPath;
+    private final TileEncoder encoder;
+    private final int existingTilesAmount;
+    private final List<PackedTile> newTiles = new ArrayList<>();
+    private final Map<PackedTile, Integer> tileIndex = new HashMap<>();
+    private final Map<String, byte[]> tileMaps = new LinkedHashMap<>();
+
+    /**
+     * reads the existing tiles through a memory mapping of the file. The
+     * packed tiles are the keys of the index, so they are not decoded. Tiles
+     * of the sprite region are not part of the index, a map which needs one
+     * gets a copy in the background region.
+     *
+     * @param tilesetBinaryPath the existing 2bpp file
+     * @param method the method the existing tiles were extracted with
+     * @param colorPal the colorPal the existing tiles were extracted with, only
+     * needed for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * @throws IOException
+     */
+    public TilesetAppender(Path tilesetBinaryPath, TileExtractingMethod method, String[] colorPal) throws IOException {
+        this.tilesetBinaryPath = tilesetBinaryPath;
+        this.encoder = new TileEncoder(FORMAT, method, colorPal);
+        int bytesPerTile = FORMAT.getBytesPerTile();
+        try (FileChannel channel = FileChannel.open(tilesetBinaryPath, StandardOpenOption.READ);
+                Arena arena = Arena.ofConfined()) {
+            long size = channel.size();
+            if (size % bytesPerTile != 0) {
+                throw new IIOException("Size of " + tilesetBinaryPath + " is not a multiple of " + bytesPerTile + " bytes.");
+            }
+            this.existingTilesAmount = (int) (size / bytesPerTile);
+            if (existingTilesAmount > TilesetHolder.TILES_AMOUNT) {
+                throw new IIOException(tilesetBinaryPath + " already exceeds the maximum tile size.");
+            }
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+            //the tilemaps use $8800 addressing, so the tiles of the sprite region can not be referenced
+            for (int i = TilesetHolder.TILESET_SPRITES_SIZE; i < existingTilesAmount; i++) {
+                byte[] data = segment.asSlice((long) i * bytesPerTile, bytesPerTile).toArray(ValueLayout.JAVA_BYTE);
+                //the last equal tile wins like for the tilemaps of -o
+                tileIndex.put(new PackedTile(FORMAT, data), i);
+            }
+        }
+    }
+
+    public int getExistingTilesAmount() {
+        return existingTilesAmount;
+    }
+
+    public List<PackedTile> getNewTiles() {
+        return newTiles;
+    }
+
+    /**
+     * index of the first new tile. New tiles never go into the sprite region,
+     * if the existing file is smaller it is filled with empty tiles.
+     */
+    private int getFirstFreeSlot() {
+        return Math.max(existingTilesAmount, TilesetHolder.TILESET_SPRITES_SIZE);
+    }
+
+    /**
+     * looks up the tiles of the maps and collects the ones which are not part
+     * of the tileset yet. Nothing is written.
+     *
+     * @param paths
+     * @throws IOException if a map is no multiple of 8 or the tileset would
+     * exceed the maximum tile size
+     */
+    public void addTileMaps(String[] paths) throws IOException {
+        for (String fp : paths) {
+            BufferedImage bfimg = ImageIO.read(Path.of(fp).toFile());
+            PackedTile[] mapTiles = encoder.extractTiles(bfimg);
+            byte[] tileMap = new byte[mapTiles.length];
+            for (int i = 0; i < mapTiles.length; i++) {
+                Integer index = tileIndex.get(mapTiles[i]);
+                if (index == null) {
+                    index = getFirstFreeSlot() + newTiles.size();
+                    newTiles.add(mapTiles[i]);
+                    tileIndex.put(mapTiles[i], index);
+                }
+                tileMap[i] = (byte) (index & 0xFF);
+            }
+            tileMaps.put(fp, tileMap);
+        }
+
+        int tilesAmount = newTiles.isEmpty() ? existingTilesAmount : getFirstFreeSlot() + newTiles.size();
+        if (tilesAmount > TilesetHolder.TILES_AMOUNT) {
+            throw new IIOException("Appending " + newTiles.size() + " tiles to " + tilesetBinaryPath
+                    + " exceeds the maximum tile size of " + TilesetHolder.TILES_AMOUNT + ".");
+        }
+    }
+
+    /**
+     * appends the new tiles to the 2bpp file and writes the tilemaps of the
+     * added maps. The existing bytes of the 2bpp file stay the same.
+     *
+     * @throws IOException
+     */
+    public void write() throws IOException {
+        if (!newTiles.isEmpty()) {
+            try (OutputStream fos = Files.newOutputStream(tilesetBinaryPath, StandardOpenOption.APPEND)) {
+                byte[] emptyTile = new byte[FORMAT.getBytesPerTile()];
+                for (int i = existingTilesAmount; i < getFirstFreeSlot(); i++) {
+                    fos.write(emptyTile);
+                }
+                for (PackedTile t : newTiles) {
+                    fos.write(t.getData());
+                }
+            }
+        }
+        for (Map.Entry<String, byte[]> entry : tileMaps.entrySet()) {
+            OutputStream fos = new FileOutputStream(new File(entry.getKey().replaceAll("\\.png$", ".tlm")));
+            fos.write(entry.getValue());
+            fos.flush();
+            fos.close();
+        }
+    }
+}
@@ -3,8 +3,10 @@
  */
 package de.kswmd.gfxtool;
 
+import de.kswmd.gfxtool.tiles.CgbPaletteSolver;
 import de.kswmd.gfxtool.tiles.DmgTile;
 import de.kswmd.gfxtool.tiles.TileExtractingMethod;
+import de.kswmd.gfxtool.tiles.TilePixels;
 import de.kswmd.gfxtool.utils.GfxUtils;
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -15,12 +17,21 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
 
@@ -35,11 +46,16 @@ public class TilesetHolder {
     public static int TILESET_WIDTH_IN_TILES = 16;
     public static int TILESET_SPRITES_SIZE = 128;
     public static int TILES_AMOUNT = TILESET_HEIGHT_IN_TILES * TILESET_WIDTH_IN_TILES;
+    //the cgb addresses 256 tiles per vram bank in the tilemaps
+    public static int CGB_TILES_AMOUNT = 512;
+    public static int CGB_ATTRIBUTE_VRAM_BANK = 1 << 3;
 
     private final Path[] tilesetImagePaths;
     private final BufferedImage tilesetImage;
     private Collection<DmgTile> dmgTiles = new ArrayList<>();
     private String[] colorPal;
+    private TileExtractingMethod extractingMethod = TileExtractingMethod.GRAY_SCALE;
+    private CgbPaletteSolver cgbPaletteSolver;
 
     /**
      * creates a new Tileset from the given paths
@@ -124,6 +140,7 @@ public class TilesetHolder {
     }
 
     public void initialize(TileExtractingMethod method) {
+        this.extractingMethod = method;
         dmgTiles.clear();
         for (int y = 0; y < tilesetImage.getHeight(); y += DmgTile.TILE_DIMENSION) {
             for (int x = 0; x < tilesetImage.getWidth(); x += DmgTile.TILE_DIMENSION) {
@@ -133,7 +150,7 @@ public class TilesetHolder {
         }
     }
 
-    public Set<String> getColorPalSetFromImage(BufferedImage image) {
+    public static Set<String> getColorPalSetFromImage(BufferedImage image) {
         Set<String> colorPalSet = new HashSet<>();
         for (int y = 0; y < image.getHeight(); y++) {
             for (int x = 0; x < image.getWidth(); x++) {
@@ -144,7 +161,7 @@ public class TilesetHolder {
         return colorPalSet;
     }
 
-    public String[] getColorPalArrayFromImage(BufferedImage image) {
+    public static String[] getColorPalArrayFromImage(BufferedImage image) {
         return getColorPalSetFromImage(image).toArray(String[]::new);
     }
 
@@ -152,6 +169,14 @@ public class TilesetHolder {
         return getColorPalSetFromImage(tilesetImage).toArray(String[]::new);
     }
 
+    public String[] getColorPal() {
+        return colorPal;
+    }
+
+    public TileExtractingMethod getExtractingMethod() {
+        return extractingMethod;
+    }
+
     public Path[] getTilesetImagePath() {
         return tilesetImagePaths;
     }
@@ -184,6 +209,64 @@ public class TilesetHolder {
         writeAllTiles(outputPath);
     }
 
+    /**
+     * assigns every tile one of the 8 cgb palettes and encodes it with the
+     * color values of its palette instead of a global colorPal
+     *
+     * @throws IOException if the colors do not fit into the palettes or the
+     * tilemaps can not address all tiles
+     */
+    public void assignCgbPalettes() throws IOException {
+        if (dmgTiles.size() > CGB_TILES_AMOUNT) {
+            throw new IIOException("Tileset has " + dmgTiles.size() + " tiles but the cgb tilemaps can only address " + CGB_TILES_AMOUNT + ".");
+        }
+        CgbPaletteSolver solver = new CgbPaletteSolver();
+        int[] colorSets = new int[dmgTiles.size()];
+        int i = 0;
+        for (DmgTile t : dmgTiles) {
+            BufferedImage img = t.getTileImage();
+            colorSets[i] = solver.getColorSet(img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth()));
+            i++;
+        }
+        int[] assignment = solver.solve(colorSets);
+        i = 0;
+        for (DmgTile t : dmgTiles) {
+            t.setPaletteIndex(assignment[i]);
+            t.setExtractingMethod(TileExtractingMethod.CGB_PALETTE);
+            t.setColorPal(solver.getColorPal(assignment[i]));
+            i++;
+        }
+        this.extractingMethod = TileExtractingMethod.CGB_PALETTE;
+        this.cgbPaletteSolver = solver;
+    }
+
+    public boolean isCgb() {
+        return cgbPaletteSolver != null;
+    }
+
+    /**
+     * writes the palettes of {@link #assignCgbPalettes()} in the 15 bit BGR
+     * format of the cgb (little endian, 4 colors per palette). Unused colors
+     * are black.
+     *
+     * @param outputPath
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public void writeCgbPalettes(String outputPath) throws FileNotFoundException, IOException {
+        OutputStream fos = new FileOutputStream(outputPath);
+        for (int p = 0; p < cgbPaletteSolver.getPaletteAmount(); p++) {
+            int[] colors = Arrays.copyOf(cgbPaletteSolver.getPaletteColors(p), CgbPaletteSolver.COLORS_PER_PALETTE);
+            for (int c : colors) {
+                int bgr = CgbPaletteSolver.toBgr555(c);
+                fos.write(bgr & 0xFF);
+                fos.write((bgr >> 8) & 0xFF);
+            }
+        }
+        fos.flush();
+        fos.close();
+    }
+
     private DmgTile createRandomDitstinctTile(Collection<DmgTile> tiles) {
         DmgTile dmgTile = null;
         do {
@@ -251,44 +334,114 @@ public class TilesetHolder {
             //cause of different memory allocation in gameboy it is no problem
             //to restart at 0. It's needed
             dt.setIndex(i % 256);
+            //the cgb takes the tiles above 256 from vram bank 1
+            dt.setVramBank(i / 256);
             i++;
         }
     }
 
     public void createDmgTileMaps(String[] paths) throws IOException {
-        for (String fp : paths) {
-            Path p = Path.of(fp);
-            BufferedImage bfimg = ImageIO.read(p.toFile());
-            if (isDimensionMultipleOf8(bfimg)) {
-                OutputStream fos = new FileOutputStream(new File(fp.replaceAll("\\.png$", ".tlm")));
-                int bs = bfimg.getWidth() / DmgTile.TILE_DIMENSION;
-                for (int y = 0; y < bfimg.getHeight(); y += DmgTile.TILE_DIMENSION) {
-                    byte[] buffer = new byte[bs];
-                    int i = 0;
-                    for (int x = 0; x < bfimg.getWidth(); x += DmgTile.TILE_DIMENSION) {
-                        BufferedImage sub = bfimg.getSubimage(x, y, DmgTile.TILE_DIMENSION, DmgTile.TILE_DIMENSION);
-                        int index = Integer.MAX_VALUE;
-                        for (DmgTile t : dmgTiles) {
-                            if (t.matches(sub)) {
-                                index = t.getIndex();
-                                //Do not break here cause if tile 0 is blank or tile in sprite region does match randomly 
-                                //iterate to the last matching tile so we do not reference to a tile in sprite region
-                                //break;
-                            }
-                        }
-
-                        buffer[i] = (byte) (index & 0xFF);
-                        i++;
-                        if (index == Integer.MAX_VALUE) {
-                            //TODO: LOG WARN OR STH ELSE
-                            throw new IOException("No tile found...");
-                        }
-                    }
-                    fos.write(buffer);
+        createDmgTileMaps(paths, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * creates the tilemaps with a pool of workers. The workers decode the
+     * images and look up the tiles, the calling thread writes the results in
+     * the order of the given paths while the next images are decoded. The
+     * first failing image in that order stops the pipeline, every image before
+     * is written.
+     *
+     * @param paths
+     * @param workers maximum amount of images decoded at the same time
+     * @throws IOException
+     */
+    public void createDmgTileMaps(String[] paths, int workers) throws IOException {
+        Map<TilePixels, DmgTile> tileIndex = createTileIndex();
+        //more workers than images are never busy
+        workers = Math.max(1, Math.min(workers, paths.length));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        //bounded so only a few finished maps wait for the writer
+        int maxPending = workers * 2;
+        Deque<Future<TileMapResult>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < paths.length || !pending.isEmpty()) {
+                while (next < paths.length && pending.size() < maxPending) {
+                    String fp = paths[next];
+                    pending.add(executor.submit(() -> createDmgTileMap(fp, tileIndex)));
+                    next++;
+                }
+                TileMapResult result = pending.poll().get();
+                if (result != null) {
+                    writeDmgTileMap(result);
                 }
-                fos.flush();
-                fos.close();
             }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioEx) {
+                throw ioEx;
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * maps the pixels of every tile to the tile. If several tiles are equal
+     * the last one wins so we do not reference to a tile in sprite region.
+     */
+    private Map<TilePixels, DmgTile> createTileIndex() {
+        Map<TilePixels, DmgTile> tileIndex = new HashMap<>();
+        for (DmgTile t : dmgTiles) {
+            tileIndex.put(TilePixels.of(t.getTileImage()), t);
+        }
+        return tileIndex;
+    }
+
+    private TileMapResult createDmgTileMap(String fp, Map<TilePixels, DmgTile> tileIndex) throws IOException {
+        Path p = Path.of(fp);
+        BufferedImage bfimg = ImageIO.read(p.toFile());
+        if (!isDimensionMultipleOf8(bfimg)) {
+            return null;
+        }
+        int width = bfimg.getWidth();
+        int[] pixels = bfimg.getRGB(0, 0, width, bfimg.getHeight(), null, 0, width);
+        int bs = width / DmgTile.TILE_DIMENSION;
+        int rows = bfimg.getHeight() / DmgTile.TILE_DIMENSION;
+        byte[] tileMap = new byte[bs * rows];
+        //the attribute map of the cgb contains the palette and vram bank of every tile
+        byte[] attributes = isCgb() ? new byte[bs * rows] : null;
+        int i = 0;
+        for (int y = 0; y < bfimg.getHeight(); y += DmgTile.TILE_DIMENSION) {
+            for (int x = 0; x < width; x += DmgTile.TILE_DIMENSION) {
+                DmgTile t = tileIndex.get(TilePixels.of(pixels, y * width + x, width));
+                if (t == null) {
+                    //TODO: LOG WARN OR STH ELSE
+                    throw new IOException("No tile found for tile " + (x / DmgTile.TILE_DIMENSION) + "," + (y / DmgTile.TILE_DIMENSION) + " in " + fp);
+                }
+                tileMap[i] = (byte) (t.getIndex() & 0xFF);
+                if (attributes != null) {
+                    attributes[i] = (byte) ((t.getPaletteIndex() & 0x07) | (t.getVramBank() == 1 ? CGB_ATTRIBUTE_VRAM_BANK : 0));
+                }
+                i++;
+            }
+        }
+        return new TileMapResult(fp, tileMap, attributes);
+    }
+
+    private void writeDmgTileMap(TileMapResult result) throws IOException {
+        OutputStream fos = new FileOutputStream(new File(result.path.replaceAll("\\.png$", ".tlm")));
+        fos.write(result.tileMap);
+        fos.flush();
+        fos.close();
+        if (result.attributes != null) {
+            OutputStream attributes = new FileOutputStream(new File(result.path.replaceAll("\\.png$", ".atr")));
+            attributes.write(result.attributes);
+            attributes.flush();
+            attributes.close();
         }
     }
 
@@ -318,4 +471,17 @@ public class TilesetHolder {
     public int getDmgTileHeight() {
         return tilesetImage.getHeight() / DmgTile.TILE_DIMENSION;
     }
+
+    private static class TileMapResult {
+
+        private final String path;
+        private final byte[] tileMap;
+        private final byte[] attributes;
+
+        private TileMapResult(String path, byte[] tileMap, byte[] attributes) {
+            this.path = path;
+            this.tileMap = tileMap;
+            this.attributes = attributes;
+        }
+    }
 }
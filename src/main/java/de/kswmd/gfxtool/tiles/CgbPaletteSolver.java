@@ -0,0 +1,179 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool.tiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.IIOException;
+
+/**
+ * Packs the colors of the tiles into the 8 background palettes of the
+ * GameBoy Color. Every color gets a bit, so the colors of a tile are a bitmask
+ * and merging, comparing and counting colors are single int operations.
+ *
+ * @author kai
+ */
+public class CgbPaletteSolver {
+
+    public static final int MAX_PALETTES = 8;
+    public static final int COLORS_PER_PALETTE = 4;
+    public static final int MAX_COLORS = Integer.SIZE;
+
+    private final List<Integer> colors = new ArrayList<>();
+    private final Map<Integer, Integer> colorBits = new HashMap<>();
+    private int[] palettes = new int[0];
+
+    /**
+     * @param pixels argb values of a tile
+     * @return the bitmask of the colors used by the pixels
+     * @throws IIOException if the image uses more colors than fit into the
+     * palettes
+     */
+    public int getColorSet(int[] pixels) throws IIOException {
+        int colorSet = 0;
+        for (int pixelColor : pixels) {
+            Integer bit = colorBits.get(pixelColor);
+            if (bit == null) {
+                if (colors.size() == MAX_COLORS) {
+                    throw new IIOException("Image uses more than " + MAX_COLORS + " colors.");
+                }
+                bit = colors.size();
+                colors.add(pixelColor);
+                colorBits.put(pixelColor, bit);
+            }
+            colorSet |= 1 << bit;
+        }
+        return colorSet;
+    }
+
+    /**
+     * merges the color sets into at most 8 palettes of 4 colors. Color sets
+     * which are contained in other ones are dropped, the remaining sets are
+     * placed biggest first into the palette which needs the fewest new colors.
+     *
+     * @param colorSets color sets of the tiles
+     * @return the palette index for every color set
+     * @throws IIOException if a tile has more than 4 colors or the sets do not
+     * fit into 8 palettes
+     */
+    public int[] solve(int[] colorSets) throws IIOException {
+        int[] distinct = Arrays.stream(colorSets).distinct().toArray();
+        for (int colorSet : distinct) {
+            if (Integer.bitCount(colorSet) > COLORS_PER_PALETTE) {
+                throw new IIOException("A tile uses more than " + COLORS_PER_PALETTE + " colors.");
+            }
+        }
+
+        //biggest sets first, equal sizes by value so the result is always the same
+        Integer[] sorted = Arrays.stream(distinct).boxed().toArray(Integer[]::new);
+        Arrays.sort(sorted, (a, b) -> Integer.bitCount(a) != Integer.bitCount(b)
+                ? Integer.bitCount(b) - Integer.bitCount(a)
+                : Integer.compareUnsigned(a, b));
+
+        List<Integer> maximalSets = new ArrayList<>();
+        for (int colorSet : sorted) {
+            boolean contained = false;
+            for (int other : maximalSets) {
+                if ((colorSet & ~other) == 0) {
+                    contained = true;
+                    break;
+                }
+            }
+            if (!contained) {
+                maximalSets.add(colorSet);
+            }
+        }
+
+        List<Integer> packed = new ArrayList<>();
+        for (int colorSet : maximalSets) {
+            int best = -1;
+            int bestNewColors = Integer.MAX_VALUE;
+            for (int p = 0; p < packed.size(); p++) {
+                int merged = packed.get(p) | colorSet;
+                int newColors = Integer.bitCount(merged) - Integer.bitCount(packed.get(p));
+                if (Integer.bitCount(merged) <= COLORS_PER_PALETTE && newColors < bestNewColors) {
+                    best = p;
+                    bestNewColors = newColors;
+                }
+            }
+            if (best >= 0) {
+                packed.set(best, packed.get(best) | colorSet);
+            } else if (packed.size() < MAX_PALETTES) {
+                packed.add(colorSet);
+            } else {
+                throw new IIOException("The colors of the tiles do not fit into " + MAX_PALETTES + " palettes.");
+            }
+        }
+        palettes = packed.stream().mapToInt(Integer::intValue).toArray();
+
+        int[] assignment = new int[colorSets.length];
+        for (int i = 0; i < colorSets.length; i++) {
+            for (int p = 0; p < palettes.length; p++) {
+                if ((colorSets[i] & ~palettes[p]) == 0) {
+                    assignment[i] = p;
+                    break;
+                }
+            }
+        }
+        return assignment;
+    }
+
+    public int getPaletteAmount() {
+        return palettes.length;
+    }
+
+    /**
+     * @param paletteIndex
+     * @return the argb colors of the palette, bright first dark last like the
+     * dmg colors
+     */
+    public int[] getPaletteColors(int paletteIndex) {
+        int colorSet = palettes[paletteIndex];
+        int[] paletteColors = new int[Integer.bitCount(colorSet)];
+        int i = 0;
+        for (int bit = 0; bit < colors.size(); bit++) {
+            if ((colorSet & (1 << bit)) != 0) {
+                paletteColors[i] = colors.get(bit);
+                i++;
+            }
+        }
+        return Arrays.stream(paletteColors)
+                .boxed()
+                .sorted((a, b) -> Float.compare(grayScale(b), grayScale(a)))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * @param paletteIndex
+     * @return the colors of the palette as hex strings for
+     * {@link TileExtractingMethod#CGB_PALETTE}
+     */
+    public String[] getColorPal(int paletteIndex) {
+        return Arrays.stream(getPaletteColors(paletteIndex))
+                .mapToObj(Integer::toHexString)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * @param pixelColor argb value
+     * @return the color in the 15 bit BGR format of the cgb
+     */
+    public static int toBgr555(int pixelColor) {
+        int r = (pixelColor >> 19) & 0x1F;
+        int g = (pixelColor >> 11) & 0x1F;
+        int b = (pixelColor >> 3) & 0x1F;
+        return r | (g << 5) | (b << 10);
+    }
+
+    private static float grayScale(int pixelColor) {
+        int r = (pixelColor >> 16) & 0xff;
+        int g = (pixelColor >> 8) & 0xff;
+        int b = pixelColor & 0xff;
+        return 0.299f * r + 0.587f * g + 0.114f * b;
+    }
+}
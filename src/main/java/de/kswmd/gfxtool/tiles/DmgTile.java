@@ -5,7 +5,6 @@ package de.kswmd.gfxtool.tiles;
 
 import static de.kswmd.gfxtool.tiles.TileExtractingMethod.GRAY_SCALE;
 import java.awt.image.BufferedImage;
-import java.util.Objects;
 
 /**
  *
@@ -23,6 +22,8 @@ public class DmgTile {
     private TileExtractingMethod extractingMethod = GRAY_SCALE;
 
     private int index;
+    private int paletteIndex;
+    private int vramBank;
 
     public DmgTile(BufferedImage tileImage) {
         this.tileImage = tileImage;
@@ -47,6 +48,22 @@ public class DmgTile {
         this.index = index;
     }
 
+    public int getPaletteIndex() {
+        return paletteIndex;
+    }
+
+    public void setPaletteIndex(int paletteIndex) {
+        this.paletteIndex = paletteIndex;
+    }
+
+    public int getVramBank() {
+        return vramBank;
+    }
+
+    public void setVramBank(int vramBank) {
+        this.vramBank = vramBank;
+    }
+
     public BufferedImage getTileImage() {
         return tileImage;
     }
@@ -76,77 +93,86 @@ public class DmgTile {
     }
 
     public byte[] get2BppArrayFromTile() {
-        int aIndex = 0;
+        int width = tileImage.getWidth();
+        int[] values = new int[width * tileImage.getHeight()];
         for (int y = 0; y < tileImage.getHeight(); y++) {
-            byte lb = 0b000000000, hb = 0b000000000;
-            for (int x = 0; x < tileImage.getWidth(); x++) {
+            for (int x = 0; x < width; x++) {
                 int pixelColor = tileImage.getRGB(x, y);
-                int a = (pixelColor >> 24) & 0xff;
-                int r = (pixelColor >> 16) & 0xff;
-                int g = (pixelColor >> 8) & 0xff;
-                int b = pixelColor & 0xff;
-
-                int byteValue = -1;
-                switch (extractingMethod) {
-                    case PIXEL_PERFECT:
-                        String hex = Integer.toHexString(pixelColor);
-                        for (int i = 0; i < colorPal.length; i++) {
-                            if (colorPal[i].toLowerCase().endsWith(hex)) {
-                                byteValue = i % 4;
-                                break;
-                            }
-                        }
-                        break;
-                    case GRAY_SCALE:
-                    default:
-                        float grayScale = ((0.299f * r) + (0.587f * g) + (0.114f * b)) * (a / 255f);
-                        byteValue = (int) ((4 * grayScale) / 256f);
-                        break;
-                }
+                int byteValue = getColorIndex(pixelColor, extractingMethod, colorPal);
 
                 if (byteValue < 0) {
                     throw new IllegalStateException("The value " + byteValue + " is no possible value.");
                 }
-
-                switch (byteValue) {
-                    case 0://0 0                        
-                        break;
-                    case 1://0 1
-                        hb |= (1 << x);
-                        break;
-                    case 2://1 0
-                        lb |= (1 << x);
-                        break;
-                    case 3://1 1
-                        lb |= (1 << x);
-                        hb |= (1 << x);
-                        break;
-                }
+                values[y * width + x] = byteValue;
             }
-            _2bppArray[aIndex] = (byte) (Integer.reverse(hb & 0xFF) >>> 24);
-            _2bppArray[aIndex + 1] = (byte) (Integer.reverse(lb & 0xFF) >>> 24);
-            aIndex += 2;
         }
+        TileFormat.DMG_2BPP.encode(values, 0, width, _2bppArray, 0);
         return _2bppArray;
     }
 
-    private String hashCodeOfPixels() {
-        int width = tileImage.getWidth();
-        int height = tileImage.getHeight();
-        StringBuilder sb = new StringBuilder();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                sb.append(tileImage.getRGB(x, y));
+    /**
+     * maps a pixel to its 2 bit color value (0 - 3) the same way the tiles
+     * are encoded
+     *
+     * @param pixelColor argb value of the pixel
+     * @param method
+     * @param colorPal only needed for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * and {@link TileExtractingMethod#CGB_PALETTE}
+     * @return the color value or -1 if the pixel is not part of the colorPal
+     */
+    public static int getColorIndex(int pixelColor, TileExtractingMethod method, String[] colorPal) {
+        return TileEncoder.getColorIndex(pixelColor, method, colorPal, TileFormat.DMG_2BPP.getColors());
+    }
+
+    /**
+     * decodes one tile in 2bpp format back into color values (0 - 3)
+     *
+     * @param src the 2bpp data
+     * @param srcOffset first byte of the tile inside src
+     * @param dest buffer for the color values
+     * @param destOffset position of the upper left pixel inside dest
+     * @param scanline width of a row inside dest
+     */
+    public static void decode2BppTile(byte[] src, int srcOffset, int[] dest, int destOffset, int scanline) {
+        for (int y = 0; y < TILE_DIMENSION; y++) {
+            int lb = src[srcOffset + y * 2] & 0xFF;
+            int hb = src[srcOffset + y * 2 + 1] & 0xFF;
+            int rowOffset = destOffset + y * scanline;
+            for (int x = 0; x < TILE_DIMENSION; x++) {
+                int bit = 7 - x;
+                dest[rowOffset + x] = ((lb >> bit) & 1) | (((hb >> bit) & 1) << 1);
+            }
+        }
+    }
+
+    /**
+     * encodes one tile of color values (0 - 3) into 2bpp format
+     *
+     * @param src the color values
+     * @param srcOffset position of the upper left pixel inside src
+     * @param scanline width of a row inside src
+     * @param dest buffer for the 2bpp data
+     * @param destOffset first byte of the tile inside dest
+     */
+    public static void encode2BppTile(int[] src, int srcOffset, int scanline, byte[] dest, int destOffset) {
+        for (int y = 0; y < TILE_DIMENSION; y++) {
+            int lb = 0, hb = 0;
+            int rowOffset = srcOffset + y * scanline;
+            for (int x = 0; x < TILE_DIMENSION; x++) {
+                int bit = 7 - x;
+                int value = src[rowOffset + x];
+                lb |= (value & 1) << bit;
+                hb |= ((value >> 1) & 1) << bit;
             }
+            dest[destOffset + y * 2] = (byte) lb;
+            dest[destOffset + y * 2 + 1] = (byte) hb;
         }
-        return sb.toString();
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 17 * hash + Objects.hashCode(this.hashCodeOfPixels());
-        return hash;
+        //same hash as the pixels of the tile, without building a string
+        return TilePixels.of(tileImage).hashCode();
     }
 
     @Override
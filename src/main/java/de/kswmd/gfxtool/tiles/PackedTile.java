@@ -0,0 +1,99 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool.tiles;
+
+import java.util.Arrays;
+
+/**
+ * A tile which only consists of its encoded data in one of the
+ * {@link TileFormat}s. Equal data means equal tiles, so it can be hashed and
+ * compared without looking at any pixels.
+ *
+ * @author kai
+ */
+public final class PackedTile {
+
+    private final TileFormat format;
+    private final byte[] data;
+    private final int hash;
+
+    public PackedTile(TileFormat format, byte[] data) {
+        if (data.length != format.getBytesPerTile()) {
+            throw new IllegalArgumentException("A packed tile in format " + format + " needs exactly " + format.getBytesPerTile() + " bytes.");
+        }
+        this.format = format;
+        this.data = data;
+        this.hash = Arrays.hashCode(data);
+    }
+
+    /**
+     * packs the color values of one tile
+     *
+     * @param format
+     * @param colorIndices
+     * @param offset position of the upper left pixel inside colorIndices
+     * @param scanline width of a row inside colorIndices
+     * @return
+     */
+    public static PackedTile of(TileFormat format, int[] colorIndices, int offset, int scanline) {
+        byte[] data = new byte[format.getBytesPerTile()];
+        format.encode(colorIndices, offset, scanline, data, 0);
+        return new PackedTile(format, data);
+    }
+
+    public TileFormat getFormat() {
+        return format;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return true if every pixel has the color value 0
+     */
+    public boolean isEmpty() {
+        for (byte b : data) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the tile mirrored horizontally
+     */
+    public PackedTile flipX() {
+        return new PackedTile(format, format.flipX(data));
+    }
+
+    /**
+     * @return the tile mirrored vertically
+     */
+    public PackedTile flipY() {
+        return new PackedTile(format, format.flipY(data));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final PackedTile other = (PackedTile) obj;
+        return hash == other.hash && format == other.format && Arrays.equals(data, other.data);
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool.tiles;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.imageio.IIOException;
+
+/**
+ * Maps the pixels of an image to color values and packs them into tiles of a
+ * {@link TileFormat}. The rows of tiles are encoded in parallel.
+ *
+ * @author kai
+ */
+public class TileEncoder {
+
+    private final TileFormat format;
+    private final TileExtractingMethod method;
+    private final String[] colorPal;
+
+    /**
+     *
+     * @param format
+     * @param method
+     * @param colorPal only needed for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * and {@link TileExtractingMethod#CGB_PALETTE}
+     */
+    public TileEncoder(TileFormat format, TileExtractingMethod method, String[] colorPal) {
+        this.format = format;
+        this.method = method;
+        this.colorPal = colorPal;
+    }
+
+    public TileFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * maps a pixel to its color value
+     *
+     * @param pixelColor argb value of the pixel
+     * @param method
+     * @param colorPal only needed for {@link TileExtractingMethod#PIXEL_PERFECT}
+     * and {@link TileExtractingMethod#CGB_PALETTE}
+     * @param colors amount of colors of the tile format
+     * @return the color value or -1 if the pixel is not part of the colorPal
+     */
+    public static int getColorIndex(int pixelColor, TileExtractingMethod method, String[] colorPal, int colors) {
+        switch (method) {
+            case CGB_PALETTE:
+                //the colors of a cgb palette are exact argb values
+                for (int i = 0; i < colorPal.length; i++) {
+                    if (Integer.parseUnsignedInt(colorPal[i], 16) == pixelColor) {
+                        return i;
+                    }
+                }
+                return -1;
+            case PIXEL_PERFECT:
+                String hex = Integer.toHexString(pixelColor);
+                for (int i = 0; i < colorPal.length; i++) {
+                    if (colorPal[i].toLowerCase().endsWith(hex)) {
+                        return i % colors;
+                    }
+                }
+                return -1;
+            case GRAY_SCALE:
+            default:
+                int a = (pixelColor >> 24) & 0xff;
+                int r = (pixelColor >> 16) & 0xff;
+                int g = (pixelColor >> 8) & 0xff;
+                int b = pixelColor & 0xff;
+                float grayScale = ((0.299f * r) + (0.587f * g) + (0.114f * b)) * (a / 255f);
+                return (int) ((colors * grayScale) / 256f);
+        }
+    }
+
+    /**
+     * packs all tiles of the image
+     *
+     * @param image width and height must be a multiple of 8
+     * @return the tiles row by row
+     * @throws IIOException if the dimensions are not a multiple of 8
+     */
+    public PackedTile[] extractTiles(BufferedImage image) throws IIOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width % DmgTile.TILE_DIMENSION != 0 || height % DmgTile.TILE_DIMENSION != 0) {
+            throw new IIOException("Wrong format of image. Width and height must be multiple of 8 pixels.");
+        }
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        int widthInTiles = width / DmgTile.TILE_DIMENSION;
+        int heightInTiles = height / DmgTile.TILE_DIMENSION;
+        PackedTile[] tiles = new PackedTile[widthInTiles * heightInTiles];
+
+        IntStream.range(0, heightInTiles).parallel().forEach(ty -> {
+            Map<Integer, Integer> colorIndices = new HashMap<>();
+            int[] buffer = new int[DmgTile.TILE_DIMENSION * DmgTile.TILE_DIMENSION];
+            for (int tx = 0; tx < widthInTiles; tx++) {
+                int offset = ty * DmgTile.TILE_DIMENSION * width + tx * DmgTile.TILE_DIMENSION;
+                for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+                    for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                        int pixelColor = pixels[offset + y * width + x];
+                        int value = colorIndices.computeIfAbsent(pixelColor, c -> getColorIndex(c, method, colorPal, format.getColors()));
+                        if (value < 0) {
+                            throw new IllegalStateException("The color " + Integer.toHexString(pixelColor) + " is not part of the colorPal.");
+                        }
+                        buffer[y * DmgTile.TILE_DIMENSION + x] = value;
+                    }
+                }
+                tiles[ty * widthInTiles + tx] = PackedTile.of(format, buffer, 0, DmgTile.TILE_DIMENSION);
+            }
+        });
+        return tiles;
+    }
+}
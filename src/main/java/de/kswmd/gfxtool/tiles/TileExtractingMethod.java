@@ -10,6 +10,7 @@ package de.kswmd.gfxtool.tiles;
 public enum TileExtractingMethod {
     
     PIXEL_PERFECT,
-    GRAY_SCALE
+    GRAY_SCALE,
+    CGB_PALETTE
     
 }
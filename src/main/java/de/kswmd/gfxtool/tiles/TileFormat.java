@@ -0,0 +1,177 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool.tiles;
+
+/**
+ * The binary formats of 8x8 tiles. The DMG stores 2 bitplanes per row, the
+ * GBA stores the color value of every pixel linear, starting with the left
+ * pixel in the low nibble (4bpp) or byte (8bpp).
+ *
+ * @author kai
+ */
+public enum TileFormat {
+
+    DMG_2BPP(2, 384),
+    GBA_4BPP(4, 1024),
+    GBA_8BPP(8, 1024);
+
+    /**
+     * size of a GBA charblock in bytes
+     */
+    public static final int CHARBLOCK_SIZE = 0x4000;
+
+    private final int bitsPerPixel;
+    private final int maxTiles;
+
+    private TileFormat(int bitsPerPixel, int maxTiles) {
+        this.bitsPerPixel = bitsPerPixel;
+        this.maxTiles = maxTiles;
+    }
+
+    public int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    /**
+     * @return amount of colors a tile can address
+     */
+    public int getColors() {
+        return 1 << bitsPerPixel;
+    }
+
+    public int getBytesPerTile() {
+        return bitsPerPixel * DmgTile.TILE_DIMENSION;
+    }
+
+    /**
+     * @return amount of bytes of one row of pixels
+     */
+    public int getBytesPerRow() {
+        return bitsPerPixel;
+    }
+
+    /**
+     * @return the maximum amount of tiles a tilemap can address
+     */
+    public int getMaxTiles() {
+        return maxTiles;
+    }
+
+    /**
+     * encodes one tile of color values
+     *
+     * @param src the color values
+     * @param srcOffset position of the upper left pixel inside src
+     * @param scanline width of a row inside src
+     * @param dest buffer for the encoded tile
+     * @param destOffset first byte of the tile inside dest
+     */
+    public void encode(int[] src, int srcOffset, int scanline, byte[] dest, int destOffset) {
+        switch (this) {
+            case GBA_4BPP:
+                for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+                    int rowOffset = srcOffset + y * scanline;
+                    int destRow = destOffset + y * getBytesPerRow();
+                    for (int x = 0; x < DmgTile.TILE_DIMENSION; x += 2) {
+                        dest[destRow + x / 2] = (byte) ((src[rowOffset + x] & 0x0F) | ((src[rowOffset + x + 1] & 0x0F) << 4));
+                    }
+                }
+                break;
+            case GBA_8BPP:
+                for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+                    int rowOffset = srcOffset + y * scanline;
+                    int destRow = destOffset + y * getBytesPerRow();
+                    for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                        dest[destRow + x] = (byte) src[rowOffset + x];
+                    }
+                }
+                break;
+            case DMG_2BPP:
+            default:
+                DmgTile.encode2BppTile(src, srcOffset, scanline, dest, destOffset);
+                break;
+        }
+    }
+
+    /**
+     * decodes one tile back into color values
+     *
+     * @param src the encoded tiles
+     * @param srcOffset first byte of the tile inside src
+     * @param dest buffer for the color values
+     * @param destOffset position of the upper left pixel inside dest
+     * @param scanline width of a row inside dest
+     */
+    public void decode(byte[] src, int srcOffset, int[] dest, int destOffset, int scanline) {
+        switch (this) {
+            case GBA_4BPP:
+                for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+                    int srcRow = srcOffset + y * getBytesPerRow();
+                    int rowOffset = destOffset + y * scanline;
+                    for (int x = 0; x < DmgTile.TILE_DIMENSION; x += 2) {
+                        int b = src[srcRow + x / 2] & 0xFF;
+                        dest[rowOffset + x] = b & 0x0F;
+                        dest[rowOffset + x + 1] = b >> 4;
+                    }
+                }
+                break;
+            case GBA_8BPP:
+                for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+                    int srcRow = srcOffset + y * getBytesPerRow();
+                    int rowOffset = destOffset + y * scanline;
+                    for (int x = 0; x < DmgTile.TILE_DIMENSION; x++) {
+                        dest[rowOffset + x] = src[srcRow + x] & 0xFF;
+                    }
+                }
+                break;
+            case DMG_2BPP:
+            default:
+                DmgTile.decode2BppTile(src, srcOffset, dest, destOffset, scanline);
+                break;
+        }
+    }
+
+    /**
+     * @param data one encoded tile
+     * @return the tile mirrored horizontally
+     */
+    public byte[] flipX(byte[] data) {
+        byte[] flipped = new byte[data.length];
+        int bytesPerRow = getBytesPerRow();
+        for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+            int row = y * bytesPerRow;
+            for (int i = 0; i < bytesPerRow; i++) {
+                int b = data[row + i] & 0xFF;
+                switch (this) {
+                    case GBA_4BPP:
+                        //mirror the bytes of the row and the two pixels inside a byte
+                        flipped[row + bytesPerRow - 1 - i] = (byte) ((b >> 4) | (b << 4));
+                        break;
+                    case GBA_8BPP:
+                        flipped[row + bytesPerRow - 1 - i] = (byte) b;
+                        break;
+                    case DMG_2BPP:
+                    default:
+                        //every byte is a bitplane of the row
+                        flipped[row + i] = (byte) (Integer.reverse(b) >>> 24);
+                        break;
+                }
+            }
+        }
+        return flipped;
+    }
+
+    /**
+     * @param data one encoded tile
+     * @return the tile mirrored vertically
+     */
+    public byte[] flipY(byte[] data) {
+        byte[] flipped = new byte[data.length];
+        int bytesPerRow = getBytesPerRow();
+        for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+            System.arraycopy(data, (DmgTile.TILE_DIMENSION - 1 - y) * bytesPerRow, flipped, y * bytesPerRow, bytesPerRow);
+        }
+        return flipped;
+    }
+}
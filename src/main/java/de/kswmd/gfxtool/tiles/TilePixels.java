@@ -0,0 +1,70 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool.tiles;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The argb pixels of one tile. Two tiles are equal if all pixels are equal,
+ * the same way {@link DmgTile#matches(BufferedImage)} compares them, but it
+ * can be used as a key of a hash map.
+ *
+ * @author kai
+ */
+public final class TilePixels {
+
+    private final int[] pixels;
+    private final int hash;
+
+    public TilePixels(int[] pixels) {
+        this.pixels = pixels;
+        this.hash = Arrays.hashCode(pixels);
+    }
+
+    /**
+     * copies the pixels of one tile out of a bigger buffer
+     *
+     * @param argb
+     * @param offset position of the upper left pixel inside argb
+     * @param scanline width of a row inside argb
+     * @return
+     */
+    public static TilePixels of(int[] argb, int offset, int scanline) {
+        int[] pixels = new int[DmgTile.TILE_DIMENSION * DmgTile.TILE_DIMENSION];
+        for (int y = 0; y < DmgTile.TILE_DIMENSION; y++) {
+            System.arraycopy(argb, offset + y * scanline, pixels, y * DmgTile.TILE_DIMENSION, DmgTile.TILE_DIMENSION);
+        }
+        return new TilePixels(pixels);
+    }
+
+    public static TilePixels of(BufferedImage tileImage) {
+        return new TilePixels(tileImage.getRGB(0, 0, tileImage.getWidth(), tileImage.getHeight(), null, 0, tileImage.getWidth()));
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final TilePixels other = (TilePixels) obj;
+        return hash == other.hash && Arrays.equals(pixels, other.pixels);
+    }
+
+}
@@ -0,0 +1,16 @@
+/*
+ * Copyright 2025 kai
+ */
+package de.kswmd.gfxtool.utils;
+
+/**
+ *
+ * @author kai
+ */
+public enum DitheringMethod {
+
+    NONE,
+    BAYER,
+    FLOYD_STEINBERG
+
+}
@@ -5,10 +5,13 @@ package de.kswmd.gfxtool.utils;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import org.apache.commons.cli.ParseException;
 
 /**
@@ -17,6 +20,23 @@ import org.apache.commons.cli.ParseException;
  */
 public class GfxUtils {
 
+    /**
+     * rows per strip of the Floyd-Steinberg dithering. Fixed so the strip
+     * borders are always the same rows, no matter how many processors run.
+     */
+    private static final int FS_STRIP_HEIGHT = 64;
+
+    private static final int[] BAYER_8X8 = {
+        0, 32, 8, 40, 2, 34, 10, 42,
+        48, 16, 56, 24, 50, 18, 58, 26,
+        12, 44, 4, 36, 14, 46, 6, 38,
+        60, 28, 52, 20, 62, 30, 54, 22,
+        3, 35, 11, 43, 1, 33, 9, 41,
+        51, 19, 59, 27, 49, 17, 57, 25,
+        15, 47, 7, 39, 13, 45, 5, 37,
+        63, 31, 55, 23, 61, 29, 53, 21
+    };
+
     private GfxUtils() {
     }
 
@@ -74,27 +94,149 @@ public class GfxUtils {
     }
 
     public static BufferedImage convertImagePixelsToColorPal(BufferedImage img, String[] colorPal) {
-        BufferedImage nImg = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        for (int y = 0; y < img.getHeight(); y++) {
-            for (int x = 0; x < img.getWidth(); x++) {
-                int color = img.getRGB(x, y);
-                Color a = new Color(color);
-                double distance = Double.MAX_VALUE;
-                Color nC = a;
-                for (String colorString : colorPal) {
-                    Color b = getColor(colorString);
-                    double cDistance = GfxUtils.colorDistance(a, b);
-                    if (cDistance < distance) {
-                        nC = b;
-                        distance = cDistance;
+        return convertImagePixelsToColorPal(img, colorPal, DitheringMethod.NONE);
+    }
+
+    /**
+     * maps every pixel to the nearest color of the colorPal. The pixels are
+     * processed in parallel on int buffers, the colorPal is only parsed once.
+     *
+     * @param img
+     * @param colorPal
+     * @param method how the error between pixel and palette color is spread
+     * @return a new image which only contains colors of the colorPal
+     */
+    public static BufferedImage convertImagePixelsToColorPal(BufferedImage img, String[] colorPal, DitheringMethod method) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] src = img.getRGB(0, 0, width, height, null, 0, width);
+        BufferedImage nImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] dest = ((DataBufferInt) nImg.getRaster().getDataBuffer()).getData();
+        int[] palette = parseColorPal(colorPal);
+
+        switch (method) {
+            case BAYER:
+                ditherOrdered(src, dest, width, height, palette);
+                break;
+            case FLOYD_STEINBERG:
+                ditherFloydSteinberg(src, dest, width, height, palette);
+                break;
+            case NONE:
+            default:
+                IntStream.range(0, height).parallel().forEach(y -> {
+                    for (int i = y * width; i < (y + 1) * width; i++) {
+                        int p = src[i];
+                        dest[i] = palette[nearestColorIndex((p >> 16) & 0xff, (p >> 8) & 0xff, p & 0xff, palette)];
                     }
-                }
-                nImg.setRGB(x, y, nC.getRGB());
-            }
+                });
+                break;
         }
         return nImg;
     }
 
+    public static int[] parseColorPal(String[] colorPal) {
+        int[] palette = new int[colorPal.length];
+        for (int i = 0; i < colorPal.length; i++) {
+            palette[i] = getColor(colorPal[i]).getRGB();
+        }
+        return palette;
+    }
+
+    /**
+     * same result as comparing {@link #colorDistance(int, int)} but without
+     * the square root. On equal distances the first color wins.
+     */
+    private static int nearestColorIndex(int r, int g, int b, int[] palette) {
+        int index = 0;
+        int distance = Integer.MAX_VALUE;
+        for (int i = 0; i < palette.length; i++) {
+            int dr = r - ((palette[i] >> 16) & 0xff);
+            int dg = g - ((palette[i] >> 8) & 0xff);
+            int db = b - (palette[i] & 0xff);
+            int cDistance = dr * dr + dg * dg + db * db;
+            if (cDistance < distance) {
+                index = i;
+                distance = cDistance;
+            }
+        }
+        return index;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static void ditherOrdered(int[] src, int[] dest, int width, int height, int[] palette) {
+        //the threshold is scaled by the distance of two colors in an evenly spread palette
+        int spread = palette.length > 1 ? 255 / (palette.length - 1) : 0;
+        int[] offsets = new int[BAYER_8X8.length];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = ((2 * BAYER_8X8[i] + 1) * spread) / 128 - spread / 2;
+        }
+        IntStream.range(0, height).parallel().forEach(y -> {
+            int rowOffset = y * width;
+            int matrixRow = (y & 7) << 3;
+            for (int x = 0; x < width; x++) {
+                int p = src[rowOffset + x];
+                int o = offsets[matrixRow | (x & 7)];
+                int r = clamp(((p >> 16) & 0xff) + o);
+                int g = clamp(((p >> 8) & 0xff) + o);
+                int b = clamp((p & 0xff) + o);
+                dest[rowOffset + x] = palette[nearestColorIndex(r, g, b, palette)];
+            }
+        });
+    }
+
+    /**
+     * Serpentine Floyd-Steinberg. A serpentine row needs the whole row above
+     * before it can start, so rows can not run as a wavefront. Instead the
+     * image is split into strips of rows which are dithered independently, the
+     * error is not carried over the strip borders. The strips have a fixed
+     * height, so the result only depends on the image.
+     */
+    private static void ditherFloydSteinberg(int[] src, int[] dest, int width, int height, int[] palette) {
+        int strips = (height + FS_STRIP_HEIGHT - 1) / FS_STRIP_HEIGHT;
+        IntStream.range(0, strips).parallel().forEach(s -> {
+            int startY = s * FS_STRIP_HEIGHT;
+            int endY = Math.min(height, startY + FS_STRIP_HEIGHT);
+            //error per channel in 1/16, one padding entry at each side
+            int[] current = new int[(width + 2) * 3];
+            int[] next = new int[(width + 2) * 3];
+            for (int y = startY; y < endY; y++) {
+                boolean leftToRight = ((y - startY) & 1) == 0;
+                int dir = leftToRight ? 1 : -1;
+                int rowOffset = y * width;
+                for (int i = 0; i < width; i++) {
+                    int x = leftToRight ? i : width - 1 - i;
+                    int p = src[rowOffset + x];
+                    int e = (x + 1) * 3;
+                    int r = clamp(((p >> 16) & 0xff) + current[e] / 16);
+                    int g = clamp(((p >> 8) & 0xff) + current[e + 1] / 16);
+                    int b = clamp((p & 0xff) + current[e + 2] / 16);
+                    int nc = palette[nearestColorIndex(r, g, b, palette)];
+                    dest[rowOffset + x] = nc;
+
+                    int forward = e + dir * 3;
+                    int backward = e - dir * 3;
+                    diffuseError(current, next, e, forward, backward, r - ((nc >> 16) & 0xff));
+                    diffuseError(current, next, e + 1, forward + 1, backward + 1, g - ((nc >> 8) & 0xff));
+                    diffuseError(current, next, e + 2, forward + 2, backward + 2, b - (nc & 0xff));
+                }
+                int[] tmp = current;
+                current = next;
+                next = tmp;
+                Arrays.fill(next, 0);
+            }
+        });
+    }
+
+    private static void diffuseError(int[] current, int[] next, int e, int forward, int backward, int error) {
+        current[forward] += error * 7;
+        next[backward] += error * 3;
+        next[e] += error * 5;
+        next[forward] += error;
+    }
+
     public static Color getColor(String hexString) {
         hexString = hexString.replaceAll("[^A-Fa-f0-9]", "");
         hexString = hexString.length() > 6 ? hexString.substring(hexString.length() - 6) : hexString;